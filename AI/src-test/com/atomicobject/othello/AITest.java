@@ -0,0 +1,248 @@
+package com.atomicobject.othello;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class AITest {
+
+	/** Opening position, player 1 to move */
+	private static final int[][] START = new int[][] {
+			{ 0, 0, 0, 0, 0, 0, 0, 0 },
+			{ 0, 0, 0, 0, 0, 0, 0, 0 },
+			{ 0, 0, 0, 0, 0, 0, 0, 0 },
+			{ 0, 0, 0, 1, 2, 0, 0, 0 },
+			{ 0, 0, 0, 2, 1, 0, 0, 0 },
+			{ 0, 0, 0, 0, 0, 0, 0, 0 },
+			{ 0, 0, 0, 0, 0, 0, 0, 0 },
+			{ 0, 0, 0, 0, 0, 0, 0, 0 } };
+
+	/** Player 1 plays [5, 0], after which player 2 has to pass */
+	private static final int[][] BEFORE_OPPONENT_PASS = new int[][] {
+			{ 0, 0, 2, 0, 2, 0, 0, 0 },
+			{ 0, 0, 2, 2, 2, 0, 2, 0 },
+			{ 1, 0, 2, 2, 2, 2, 0, 0 },
+			{ 1, 2, 2, 2, 2, 2, 2, 0 },
+			{ 2, 2, 2, 2, 2, 2, 2, 1 },
+			{ 0, 2, 2, 1, 2, 1, 2, 0 },
+			{ 2, 1, 2, 2, 1, 1, 1, 2 },
+			{ 1, 2, 2, 2, 1, 1, 1, 1 } };
+
+	private static final int[][] AFTER_OPPONENT_PASS = new int[][] {
+			{ 0, 0, 2, 0, 2, 0, 0, 0 },
+			{ 0, 0, 2, 2, 2, 0, 2, 0 },
+			{ 1, 0, 2, 2, 2, 2, 0, 0 },
+			{ 1, 2, 2, 2, 2, 2, 2, 0 },
+			{ 1, 2, 2, 2, 2, 2, 2, 1 },
+			{ 1, 1, 1, 1, 2, 1, 2, 0 },
+			{ 1, 1, 2, 2, 1, 1, 1, 2 },
+			{ 1, 2, 2, 2, 1, 1, 1, 1 } };
+
+	/**
+	 * Player 1 plays [6, 2], player 2 plays [5, 0], player 1 has to pass and
+	 * player 2 plays [6, 3]
+	 */
+	private static final int[][] BEFORE_AGENT_PASS = new int[][] {
+			{ 0, 0, 0, 0, 0, 0, 0, 0 },
+			{ 0, 0, 0, 0, 0, 0, 0, 0 },
+			{ 0, 0, 0, 0, 0, 0, 0, 0 },
+			{ 2, 0, 0, 1, 1, 1, 0, 0 },
+			{ 1, 2, 1, 1, 1, 0, 0, 0 },
+			{ 0, 0, 2, 0, 0, 0, 0, 0 },
+			{ 0, 0, 0, 0, 0, 0, 0, 0 },
+			{ 0, 0, 0, 0, 0, 0, 0, 0 } };
+
+	private static final int[][] AFTER_AGENT_PASS = new int[][] {
+			{ 0, 0, 0, 0, 0, 0, 0, 0 },
+			{ 0, 0, 0, 0, 0, 0, 0, 0 },
+			{ 0, 0, 0, 0, 0, 0, 0, 0 },
+			{ 2, 0, 0, 1, 1, 1, 0, 0 },
+			{ 2, 2, 1, 1, 1, 0, 0, 0 },
+			{ 2, 0, 2, 0, 0, 0, 0, 0 },
+			{ 0, 0, 1, 2, 0, 0, 0, 0 },
+			{ 0, 0, 0, 0, 0, 0, 0, 0 } };
+
+	@Test
+	public void computeMoveReturnsValidMove() {
+		AI ai = new AI();
+		int[] move = ai.computeMove(state(START, 1));
+
+		assertEquals(4, validMoves(START, 1).size());
+		assertTrue(contains(validMoves(START, 1), move));
+	}
+
+	@Test
+	public void findPlayedMovesNormalTurn() {
+		int[][] after = play(play(START, new int[] { 2, 4 }, 1), new int[] { 2, 5 }, 2);
+
+		List<int[]> plies = new AI().findPlayedMoves(START, after, 1);
+		assertEquals(2, plies.size());
+		assertArrayEquals(new int[] { 2, 4 }, plies.get(0));
+		assertArrayEquals(new int[] { 2, 5 }, plies.get(1));
+	}
+
+	@Test
+	public void findPlayedMovesOpponentPass() {
+		List<int[]> plies = new AI().findPlayedMoves(BEFORE_OPPONENT_PASS, AFTER_OPPONENT_PASS, 1);
+		assertEquals(2, plies.size());
+		assertArrayEquals(new int[] { 5, 0 }, plies.get(0));
+		assertArrayEquals(AI.PASS, plies.get(1));
+	}
+
+	@Test
+	public void findPlayedMovesAgentPass() {
+		List<int[]> plies = new AI().findPlayedMoves(BEFORE_AGENT_PASS, AFTER_AGENT_PASS, 1);
+		assertEquals(4, plies.size());
+		assertArrayEquals(new int[] { 6, 2 }, plies.get(0));
+		assertArrayEquals(new int[] { 5, 0 }, plies.get(1));
+		assertArrayEquals(AI.PASS, plies.get(2));
+		assertArrayEquals(new int[] { 6, 3 }, plies.get(3));
+	}
+
+	@Test
+	public void findPlayedMovesNewGame() {
+		assertNull(new AI().findPlayedMoves(AFTER_OPPONENT_PASS, START, 1));
+	}
+
+	@Test
+	public void findPlayedMovesUnchangedBoard() {
+		assertNull(new AI().findPlayedMoves(START, START, 1));
+	}
+
+	@Test
+	public void resumeSearchShiftsPrincipalVariation() {
+		AI ai = new AI();
+		ai.computeMove(state(START, 1));
+		List<int[]> line = new ArrayList<int[]>(ai.getPrincipalVariation());
+		int depth = ai.getCompletedDepth();
+		assertTrue(line.size() >= 3);
+
+		int[][] next = play(play(START, line.get(0), 1), line.get(1), 2);
+		assertEquals(depth - 1, ai.resumeSearch(next, 1));
+		assertEquals(depth - 2, ai.getCompletedDepth());
+		List<int[]> kept = ai.getPrincipalVariation();
+		assertEquals(line.size() - 2, kept.size());
+		for (int i = 0; i < kept.size(); i++) {
+			assertArrayEquals(line.get(i + 2), kept.get(i));
+		}
+	}
+
+	@Test
+	public void resumeSearchDropsPrincipalVariationWhenNotFollowed() {
+		AI ai = new AI();
+		ai.computeMove(state(START, 1));
+		List<int[]> line = new ArrayList<int[]>(ai.getPrincipalVariation());
+
+		// Find a reply the principal variation did not expect
+		int[][] board = play(START, line.get(0), 1);
+		int[] reply = null;
+		for (int[] move : validMoves(board, 2)) {
+			if (move[0] != line.get(1)[0] || move[1] != line.get(1)[1]) {
+				reply = move;
+			}
+		}
+		assertNotNull(reply);
+
+		assertEquals(1, ai.resumeSearch(play(board, reply, 2), 1));
+		assertTrue(ai.getPrincipalVariation().isEmpty());
+		assertEquals(0, ai.getCompletedDepth());
+		// Searched positions are still kept
+		assertTrue(ai.isSearched(START, 1));
+	}
+
+	@Test
+	public void resumeSearchResetsOnNewGame() {
+		AI ai = new AI();
+		ai.computeMove(state(AFTER_OPPONENT_PASS, 1));
+		assertTrue(ai.isSearched(AFTER_OPPONENT_PASS, 1));
+
+		assertEquals(1, ai.resumeSearch(START, 1));
+		assertTrue(ai.getPrincipalVariation().isEmpty());
+		assertEquals(0, ai.getCompletedDepth());
+		assertFalse(ai.isSearched(AFTER_OPPONENT_PASS, 1));
+	}
+
+	@Test
+	public void resumeSearchResetsOnChangedPlayer() {
+		AI ai = new AI();
+		ai.computeMove(state(START, 1));
+		List<int[]> line = new ArrayList<int[]>(ai.getPrincipalVariation());
+		int[][] next = play(play(START, line.get(0), 1), line.get(1), 2);
+
+		assertEquals(1, ai.resumeSearch(next, 2));
+		assertTrue(ai.getPrincipalVariation().isEmpty());
+		assertEquals(0, ai.getCompletedDepth());
+		assertFalse(ai.isSearched(START, 1));
+	}
+
+	@Test
+	public void ponderDeepensPredictedPosition() throws InterruptedException {
+		AI ai = new AI();
+		ai.computeMove(state(START, 1));
+		List<int[]> line = new ArrayList<int[]>(ai.getPrincipalVariation());
+		int depth = ai.getCompletedDepth();
+
+		ai.ponder();
+		Thread.sleep(300);
+
+		int[][] next = play(play(START, line.get(0), 1), line.get(1), 2);
+		assertTrue(ai.resumeSearch(next, 1) > depth - 1);
+	}
+
+	private static GameState state(int[][] board, int player) {
+		GameState state = new GameState();
+		state.setPlayer(player);
+		state.setBoard(board);
+		state.setMaxTurnTime(500);
+		return state;
+	}
+
+	private static boolean contains(List<int[]> moves, int[] move) {
+		for (int[] m : moves) {
+			if (m[0] == move[0] && m[1] == move[1]) return true;
+		}
+		return false;
+	}
+
+	private static List<int[]> flips(int[][] board, int[] move, int player) {
+		List<int[]> flips = new ArrayList<int[]>();
+		if (board[move[0]][move[1]] != 0) return flips;
+		for (int dr = -1; dr <= 1; dr++) {
+			for (int dc = -1; dc <= 1; dc++) {
+				List<int[]> line = new ArrayList<int[]>();
+				int r = move[0] + dr, c = move[1] + dc;
+				while ((dr != 0 || dc != 0) && r >= 0 && r < 8 && c >= 0 && c < 8
+						&& board[r][c] != 0 && board[r][c] != player) {
+					line.add(new int[] { r, c });
+					r += dr;
+					c += dc;
+				}
+				if (!line.isEmpty() && r >= 0 && r < 8 && c >= 0 && c < 8 && board[r][c] == player) {
+					flips.addAll(line);
+				}
+			}
+		}
+		return flips;
+	}
+
+	private static List<int[]> validMoves(int[][] board, int player) {
+		List<int[]> moves = new ArrayList<int[]>();
+		for (int r = 0; r < 8; r++) {
+			for (int c = 0; c < 8; c++) {
+				if (!flips(board, new int[] { r, c }, player).isEmpty()) moves.add(new int[] { r, c });
+			}
+		}
+		return moves;
+	}
+
+	private static int[][] play(int[][] board, int[] move, int player) {
+		int[][] next = new int[8][];
+		for (int i = 0; i < 8; i++) next[i] = board[i].clone();
+		for (int[] tile : flips(board, move, player)) next[tile[0]][tile[1]] = player;
+		next[move[0]][move[1]] = player;
+		return next;
+	}
+}
@@ -1,32 +1,93 @@
 package com.atomicobject.othello;
 
 import java.util.ArrayList;
-import java.util.PriorityQueue;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
 
 /**
  * Implementation of the Mini-Max Alpha-Beta Pruning Algorithm for the board
- * game Othello.
+ * game Othello. Search state is kept between turns so that each call to
+ * computeMove can pick up iterative deepening where the previous turn left
+ * off.
  *
  * @author Noah Clouser
  */
 public class AI {
     /** Maximum depth of the Mini-Max search tree */
-    private static final int     DEPTH      = 3;
+    private static final int      MAX_DEPTH         = 60;
+    /** Portion of the server's max turn time spent searching (1 / divisor) */
+    private static final int      TURN_TIME_DIVISOR = 5;
+    /** Search time in milliseconds when the server sends no max turn time */
+    private static final int      DEFAULT_TIME      = 1000;
+    /** Number of slots in the table of searched positions, a power of 2 */
+    private static final int      TABLE_SIZE        = 1 << 20;
+    /** Most tiles placed between two turns that will be replayed */
+    private static final int      MAX_REPLAY        = 8;
+    /** Stored score is the exact value of the position */
+    private static final int      EXACT             = 0;
+    /** Stored score is a lower bound, the search failed high */
+    private static final int      LOWER             = 1;
+    /** Stored score is an upper bound, the search failed low */
+    private static final int      UPPER             = 2;
+    /** Move used when the player to move has no valid moves */
+    static final int[]            PASS              = { -1, -1 };
     /** Maximum index of the columns in the game board */
-    private final static int     MAX_COL    = 7;
+    private final static int      MAX_COL           = 7;
     /** Maximum index of the rows in the game board */
-    private final static int     MAX_ROW    = 7;
+    private final static int      MAX_ROW           = 7;
     /** Minimum index of the columns in the game board */
-    private final static int     MIN_COL    = 0;
+    private final static int      MIN_COL           = 0;
     /** Minimum index of the rows in the game board */
-    private final static int     MIN_ROW    = 0;
+    private final static int      MIN_ROW           = 0;
     /**
      * 2D array for traversing the game board in 1 of 8 possible directions.
      * Index 0 of a row pertains to the X value and index 1 pertains to the Y
      * value
      */
-    private final static int[][] directions = { { 0, 1 }, { 0, -1 }, { 1, 0 }, { -1, 0 }, { 1, 1 }, { -1, -1 },
-            { 1, -1 }, { -1, 1 }, };
+    private final static int[][]  directions        = { { 0, 1 }, { 0, -1 }, { 1, 0 }, { -1, 0 }, { 1, 1 },
+            { -1, -1 }, { 1, -1 }, { -1, 1 }, };
+    /** Zobrist keys, one random number per square and tile value */
+    private final static long[][][] ZOBRIST         = new long[MAX_ROW + 1][MAX_COL + 1][3];
+    /** Zobrist key mixed in when player 2 is to move */
+    private final static long     SIDE_KEY;
+
+    static {
+        final Random random = new Random( 2018 );
+        for ( int row = MIN_ROW; row <= MAX_ROW; row++ ) {
+            for ( int col = MIN_COL; col <= MAX_COL; col++ ) {
+                ZOBRIST[row][col][1] = random.nextLong();
+                ZOBRIST[row][col][2] = random.nextLong();
+            }
+        }
+        SIDE_KEY = random.nextLong();
+    }
+
+    /** Game board received on the previous turn, null before the first turn */
+    private int[][]               previous_board;
+    /** Player the agent was on the previous turn */
+    private int                   previous_player;
+    /**
+     * Best line of play found on the previous turn, starting with our move.
+     * Passes are recorded as PASS
+     */
+    private ArrayList<int[]>      principal_variation = new ArrayList<int[]>();
+    /** Deepest iteration completed on the previous turn */
+    private int                   completed_depth;
+    /** History heuristic, how often a square caused a cutoff weighted by depth */
+    private int[][]               history             = new int[MAX_ROW + 1][MAX_COL + 1];
+    /** Scores and best moves of searched positions, indexed by Zobrist hash */
+    private final SearchEntry[]   table               = new SearchEntry[TABLE_SIZE];
+    /** Number of the current turn, entries from older turns may be replaced */
+    private int                   search_age;
+    /** Player whose score is being maximized by the current search */
+    private int                   agent;
+    /** Time in milliseconds after which the current iteration is abandoned */
+    private volatile long         deadline;
+    /** Set once the current iteration ran past the deadline */
+    private boolean               aborted;
+    /** Background search running on the opponent's time, null when idle */
+    private Thread                ponder_thread;
 
     /**
      * Default constructor
@@ -36,9 +97,10 @@ public class AI {
 
     /**
      * Determine the next best move the AI agent should execute. Utilizing the
-     * Mini-Max Alpha-Beta Pruning algorithm looks at each possible valid move
-     * and searches the next DEPTH - 1 moves and evaluates the state of the
-     * board determined by some heuristic.
+     * Mini-Max Alpha-Beta Pruning algorithm with iterative deepening, searches
+     * one ply deeper each iteration until the turn's time budget runs out.
+     * When the board follows on from the previous turn, the search resumes
+     * from the depth already reached instead of starting at depth 1.
      *
      * @param state
      *            Current state of the game board. Must be a GameState object
@@ -50,110 +112,703 @@ public class AI {
         // board
         final int player = state.getPlayer();
         final int opponent = ( player == 1 ) ? 2 : 1;
+        final int[][] board = cloneBoard( state.getBoard() );
+
+        // Carry over what the previous turn learned about this position, or
+        // forget everything if a new game has started
+        final int start_depth = resumeSearch( board, player );
+        previous_board = board;
+        previous_player = player;
+        search_age++;
 
         // Find all possible valid moves of the game board before any potential
         // moves have been placed
-        final ArrayList<MoveNode> valid_moves = getValidMoves( state.getBoard(), player, opponent );
+        final ArrayList<MoveNode> valid_moves = getValidMoves( board, player, opponent );
         if ( valid_moves.size() == 0 ) {
+            principal_variation.clear();
+            completed_depth = 0;
             return new int[] { 0, 0 };
         }
 
-        int score = 0;
-        // At this stage the agent is looking at the root of each possible valid
-        // move
-        final int depth_counter = 0;
-        // Keeps track of valid_moves and their score to determine which move
-        // will be picked
-        final PriorityQueue<MoveNode> moves = new PriorityQueue<MoveNode>();
+        final long search_time = ( state.getMaxTurnTime() > 0 ) ? state.getMaxTurnTime() / TURN_TIME_DIVISOR
+                : DEFAULT_TIME;
+        final long end = System.currentTimeMillis() + search_time;
+        final int max_depth = Math.min( MAX_DEPTH, countEmpty( board ) );
+
+        agent = player;
+        aborted = false;
+        // The head of the kept principal variation is a legal fallback, so the
+        // first iteration may be cut short. Without one, the first iteration
+        // must finish.
+        int[] best_move = null;
+        int depth = 1;
+        if ( !principal_variation.isEmpty() && containsMove( valid_moves, principal_variation.get( 0 ) ) ) {
+            best_move = principal_variation.get( 0 );
+            depth = Math.min( start_depth, max_depth );
+        }
+        deadline = ( best_move == null ) ? Long.MAX_VALUE : end;
+
+        completed_depth = depth - 1;
+        do {
+            final int[] move = searchRoot( board, valid_moves, depth, best_move );
+            if ( aborted ) {
+                break;
+            }
+            best_move = move;
+            completed_depth = depth;
+            deadline = end;
+            depth++;
+        }
+        while ( depth <= max_depth && System.currentTimeMillis() < end );
+
+        principal_variation = extractPrincipalVariation( board, best_move, completed_depth );
+        return best_move;
+    }
+
+    /**
+     * Keeps searching while the opponent decides on their move. Plays the
+     * agent's move and the predicted reply from the principal variation and
+     * deepens the resulting position in the background, extending the kept
+     * line. If the opponent plays the predicted reply, the next call to
+     * computeMove resumes from the depth reached here. Call after the move
+     * returned by computeMove has been sent.
+     */
+    public void ponder () {
+        stopPondering();
+        if ( previous_board == null || principal_variation.size() < 2 ) {
+            return;
+        }
+        int[][] board = previous_board;
+        int mover = agent;
+        for ( final int[] move : principal_variation.subList( 0, 2 ) ) {
+            final int other = ( mover == 1 ) ? 2 : 1;
+            if ( move != PASS ) {
+                board = flipTiles( perceive( move, board, mover, other ), board, mover );
+            }
+            mover = other;
+        }
+        final ArrayList<MoveNode> valid_moves = getValidMoves( board, agent, ( agent == 1 ) ? 2 : 1 );
+        if ( mover != agent || valid_moves.size() == 0 ) {
+            return;
+        }
+
+        final int[][] ponder_board = board;
+        aborted = false;
+        deadline = Long.MAX_VALUE;
+        ponder_thread = new Thread( () -> ponder( ponder_board, valid_moves ) );
+        ponder_thread.setDaemon( true );
+        ponder_thread.start();
+    }
 
-        for ( final MoveNode possible_move : valid_moves ) {
-            score = alpha_beta_mini_max( depth_counter + 1, cloneBoard( state.getBoard() ), possible_move.position,
-                    Integer.MIN_VALUE, Integer.MAX_VALUE, opponent );
-            moves.add( new MoveNode( possible_move.getPosition(), score ) );
+    /**
+     * Iterative deepening run by the ponder thread until stopPondering is
+     * called or the end of the game is reached.
+     *
+     * @param board
+     *            Game board after the agent's move and the predicted reply
+     * @param valid_moves
+     *            ArrayList of the agent's valid moves on board
+     */
+    private void ponder ( final int[][] board, final ArrayList<MoveNode> valid_moves ) {
+        final ArrayList<int[]> predicted = new ArrayList<int[]>( principal_variation.subList( 0, 2 ) );
+        final int max_depth = Math.min( MAX_DEPTH, countEmpty( board ) );
+        int[] best_move = null;
+        int depth = 1;
+        if ( principal_variation.size() > 2 && containsMove( valid_moves, principal_variation.get( 2 ) ) ) {
+            best_move = principal_variation.get( 2 );
+            depth = Math.max( 1, Math.min( completed_depth - 1, max_depth ) );
         }
 
-        // Return move with the highest score
-        return moves.poll().getPosition();
+        while ( depth <= max_depth ) {
+            final int[] move = searchRoot( board, valid_moves, depth, best_move );
+            if ( aborted ) {
+                return;
+            }
+            best_move = move;
+            final ArrayList<int[]> line = new ArrayList<int[]>( predicted );
+            line.addAll( extractPrincipalVariation( board, best_move, depth ) );
+            principal_variation = line;
+            completed_depth = depth + predicted.size();
+            depth++;
+        }
+    }
+
+    /**
+     * Stops the ponder thread, if any, and waits for it to finish so the
+     * search state can be used again.
+     */
+    private void stopPondering () {
+        if ( ponder_thread == null ) {
+            return;
+        }
+        deadline = 0;
+        try {
+            ponder_thread.join();
+        }
+        catch ( final InterruptedException e ) {
+            e.printStackTrace();
+        }
+        ponder_thread = null;
+    }
+
+    /**
+     * Compares the new game board with the previous one to decide how much of
+     * the previous turn's search state still applies. Everything is forgotten
+     * when a new game has started. Otherwise the remembered positions and
+     * history are kept, and the principal variation is shifted past the moves
+     * that were played if the game followed it.
+     *
+     * @param board
+     *            Game board received this turn
+     * @param player
+     *            int value of the agent this turn
+     * @return Returns the depth iterative deepening should start from
+     */
+    int resumeSearch ( final int[][] board, final int player ) {
+        stopPondering();
+        if ( previous_board == null || player != previous_player || tilesRemoved( previous_board, board ) ) {
+            // First turn or a new game on the same connection
+            Arrays.fill( table, null );
+            history = new int[MAX_ROW + 1][MAX_COL + 1];
+            principal_variation.clear();
+            completed_depth = 0;
+            return 1;
+        }
+
+        // Age the history so cutoffs found this turn outweigh older ones
+        for ( int row = 0; row < history.length; row++ ) {
+            for ( int col = 0; col < history[row].length; col++ ) {
+                history[row][col] /= 2;
+            }
+        }
+
+        // The principal variation is only still useful if the game followed it
+        final ArrayList<int[]> plies = findPlayedMoves( previous_board, board, player );
+        boolean followed = plies != null && plies.size() < principal_variation.size();
+        for ( int i = 0; followed && i < plies.size(); i++ ) {
+            followed = Arrays.equals( plies.get( i ), principal_variation.get( i ) );
+        }
+        if ( !followed ) {
+            principal_variation.clear();
+            completed_depth = 0;
+            return 1;
+        }
+        principal_variation = new ArrayList<int[]>(
+                principal_variation.subList( plies.size(), principal_variation.size() ) );
+        completed_depth -= plies.size();
+        return Math.max( 1, completed_depth + 1 );
+    }
+
+    /**
+     * Determines the moves played between two game boards. The first move is
+     * the agent's reply from the previous turn. The opponent may then move
+     * several times in a row when the agent has to pass.
+     *
+     * @param before
+     *            Game board on the previous turn
+     * @param after
+     *            Game board on this turn
+     * @param player
+     *            int value of the agent
+     * @return Returns an ArrayList of the [x, y] moves in the order they were
+     *         played, with PASS for each forced pass, or null if no sequence
+     *         of valid moves leads from before to after
+     */
+    ArrayList<int[]> findPlayedMoves ( final int[][] before, final int[][] after, final int player ) {
+        if ( tilesRemoved( before, after ) ) {
+            return null;
+        }
+        final ArrayList<int[]> placed = new ArrayList<int[]>();
+        for ( int row = 0; row < before.length; row++ ) {
+            for ( int col = 0; col < before[row].length; col++ ) {
+                if ( before[row][col] == 0 && after[row][col] != 0 ) {
+                    placed.add( new int[] { row, col } );
+                }
+            }
+        }
+        // At least the agent's own move must have been placed
+        if ( placed.size() == 0 || placed.size() > MAX_REPLAY ) {
+            return null;
+        }
+        return replay( before, after, player, player, placed, new ArrayList<int[]>() );
+    }
+
+    /**
+     * Recursive helper for findPlayedMoves that tries each placed tile as the
+     * next move of mover, inserting a PASS whenever the next player has no
+     * valid moves.
+     *
+     * @param board
+     *            Game board after the moves in plies
+     * @param after
+     *            Game board the moves must lead to
+     * @param mover
+     *            int value of the player to move on board
+     * @param player
+     *            int value of the agent, who must be to move on after
+     * @param remaining
+     *            [x, y] squares placed on after that are still empty on board
+     * @param plies
+     *            Moves played so far
+     * @return Returns the completed plies, or null if none lead to after
+     */
+    private ArrayList<int[]> replay ( final int[][] board, final int[][] after, final int mover, final int player,
+            final ArrayList<int[]> remaining, final ArrayList<int[]> plies ) {
+        if ( remaining.size() == 0 ) {
+            return ( mover == player && Arrays.deepEquals( board, after ) ) ? plies : null;
+        }
+        final int other = ( mover == 1 ) ? 2 : 1;
+        final ArrayList<MoveNode> valid_moves = getValidMoves( board, mover, other );
+
+        for ( int i = 0; i < remaining.size(); i++ ) {
+            final int[] move = remaining.get( i );
+            if ( !containsMove( valid_moves, move ) ) {
+                continue;
+            }
+            final int[][] next_board = flipTiles( perceive( move, board, mover, other ), board, mover );
+            final ArrayList<int[]> next_plies = new ArrayList<int[]>( plies );
+            next_plies.add( move );
+            int next_mover = other;
+            if ( getValidMoves( next_board, other, mover ).size() == 0
+                    && getValidMoves( next_board, mover, other ).size() != 0 ) {
+                next_plies.add( PASS );
+                next_mover = mover;
+            }
+            final ArrayList<int[]> next_remaining = new ArrayList<int[]>( remaining );
+            next_remaining.remove( i );
+
+            final ArrayList<int[]> result = replay( next_board, after, next_mover, player, next_remaining,
+                    next_plies );
+            if ( result != null ) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Searches each valid move of the agent to the given depth and picks the
+     * one with the highest score.
+     *
+     * @param board
+     *            Current state of the game board
+     * @param valid_moves
+     *            ArrayList of the agent's valid moves on board
+     * @param depth
+     *            Depth of this iteration
+     * @param first_move
+     *            [x, y] move to search first, usually the previous iteration's
+     *            best move. May be null
+     * @return Returns the [x, y] best move, or null if the search was aborted
+     */
+    private int[] searchRoot ( final int[][] board, final ArrayList<MoveNode> valid_moves, final int depth,
+            final int[] first_move ) {
+        final int opponent = ( agent == 1 ) ? 2 : 1;
+        final long hash = hash( board, agent );
+        int alpha = Integer.MIN_VALUE;
+        int[] best_move = null;
+
+        for ( final MoveNode possible_move : orderMoves( valid_moves, first_move ) ) {
+            final ArrayList<MoveNode> change_tiles = perceive( possible_move.getPosition(), board, agent, opponent );
+            final int score = alpha_beta_mini_max( 1, depth, flipTiles( change_tiles, board, agent ),
+                    hashMove( hash, board, change_tiles, agent ), opponent, alpha, Integer.MAX_VALUE );
+            if ( aborted ) {
+                return null;
+            }
+            if ( best_move == null || score > alpha ) {
+                alpha = score;
+                best_move = possible_move.getPosition();
+            }
+        }
+        store( hash, depth, alpha, EXACT, best_move );
+        return best_move;
     }
 
     /**
      * Recursive function to search through each possible move while pruning
-     * branches where beta <= alpha.
+     * branches where beta <= alpha. Scores are always from the agent's point
+     * of view so they can be remembered and compared across iterations and
+     * turns. A player without valid moves passes, and the position is only a
+     * leaf when neither player can move.
      *
      * @param depth_counter
      *            Tracker of the depth of the current recursive branch. Must be
-     *            <= DEPTH
+     *            <= max_depth
+     * @param max_depth
+     *            Depth of the current iteration
      * @param board
-     *            2D int array of the game board before the next move is placed
-     * @param move
-     *            Validated [x, y] move to be placed on the game board
+     *            2D int array of the game board to search
+     * @param hash
+     *            Zobrist hash of board with player to move
+     * @param player
+     *            int value of the player to move on board
      * @param alpha
      *            The best value that the maximizer currently can guarantee at
      *            that level or above.
      * @param beta
      *            The best value that the minimizer currently can guarantee at
      *            that level or above.
-     * @return
+     * @return Returns the score of board
      */
-    private int alpha_beta_mini_max ( final int depth_counter, final int[][] board, final int[] move, int alpha,
-            int beta, final int player ) {
+    private int alpha_beta_mini_max ( final int depth_counter, final int max_depth, final int[][] board,
+            final long hash, final int player, int alpha, int beta ) {
 
         final int opponent = ( player == 1 ) ? 2 : 1;
 
-        // Find what tiles should be flipped
-        final ArrayList<MoveNode> change_tiles = perceive( move, board, player, opponent );
-        // Flip those tiles in a new board
-        final int[][] new_board = flipTiles( change_tiles, board, player );
-        // Find valid moves from new board
-        final ArrayList<MoveNode> children = getValidMoves( new_board, player, opponent );
-        // Limit? Leaf node?
-        if ( depth_counter >= DEPTH || children.size() == 0 ) {
-            return score( board, player );
-        }
-
-        // Initialize best_score;
-        int best_score;
-
-        // Maximize the score, this is the AI player
-        if ( depth_counter % 2 == 0 ) {
-            // best_score refers to the largest heuristic score found among this
-            // branch's children
-            best_score = Integer.MIN_VALUE;
-            int score;
-
-            for ( final MoveNode child : children ) {
-                // Swap player to be the opponent of the current player because
-                // we are incrementing the depth which changes maximizing to
-                // minimizing in the recursive child call
-                score = alpha_beta_mini_max( depth_counter + 1, new_board, child.getPosition(), alpha, beta, opponent );
-                best_score = Math.max( best_score, score );
-                alpha = Math.max( alpha, best_score );
+        // Limit?
+        if ( depth_counter >= max_depth ) {
+            return score( board, agent );
+        }
+        // Find the moves of the player to move. Leaf node if neither can move
+        final ArrayList<MoveNode> valid_moves = getValidMoves( board, player, opponent );
+        if ( valid_moves.size() == 0 && getValidMoves( board, opponent, player ).size() == 0 ) {
+            return score( board, agent );
+        }
+        if ( System.currentTimeMillis() > deadline ) {
+            aborted = true;
+            return 0;
+        }
+
+        final int remaining = max_depth - depth_counter;
+        final int original_alpha = alpha;
+        final int original_beta = beta;
+
+        // Reuse what an earlier iteration or turn found for this position
+        final SearchEntry entry = probe( hash );
+        int[] first_move = null;
+        if ( entry != null ) {
+            if ( entry.depth >= remaining ) {
+                if ( entry.bound == EXACT ) {
+                    return entry.score;
+                }
+                else if ( entry.bound == LOWER ) {
+                    alpha = Math.max( alpha, entry.score );
+                }
+                else {
+                    beta = Math.min( beta, entry.score );
+                }
                 if ( alpha >= beta ) {
-                    return alpha;
+                    return entry.score;
                 }
             }
-            return best_score;
+            first_move = entry.best_move;
+        }
+
+        final ArrayList<MoveNode> children;
+        if ( valid_moves.size() == 0 ) {
+            children = new ArrayList<MoveNode>();
+            children.add( new MoveNode( PASS ) );
         }
-        // Minimize the score, this is the opponent to the AI player
         else {
-            // best_score refers to the smallest heuristic score found among
-            // this branch's children
-            best_score = Integer.MAX_VALUE;
-            int score;
-
-            for ( final MoveNode child : children ) {
-                // Swap player to be the opponent because we are incrementing
-                // the depth which changes minimizing to maximizing in the
-                // recursive child call
-                score = alpha_beta_mini_max( depth_counter + 1, new_board, child.getPosition(), alpha, beta, opponent );
-                best_score = Math.min( best_score, score );
+            children = orderMoves( valid_moves, first_move );
+        }
+
+        // Maximize the score when the agent is to move, otherwise minimize
+        final boolean maximize = player == agent;
+        int best_score = maximize ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        int[] best_move = null;
+
+        for ( final MoveNode child : children ) {
+            final int score;
+            if ( child.getPosition() == PASS ) {
+                // The board stays the same and the other player moves again
+                score = alpha_beta_mini_max( depth_counter + 1, max_depth, board, hash ^ SIDE_KEY, opponent, alpha,
+                        beta );
+            }
+            else {
+                final ArrayList<MoveNode> change_tiles = perceive( child.getPosition(), board, player, opponent );
+                score = alpha_beta_mini_max( depth_counter + 1, max_depth, flipTiles( change_tiles, board, player ),
+                        hashMove( hash, board, change_tiles, player ), opponent, alpha, beta );
+            }
+            if ( aborted ) {
+                return 0;
+            }
+            if ( best_move == null || ( maximize ? score > best_score : score < best_score ) ) {
+                best_score = score;
+                best_move = child.getPosition();
+            }
+            if ( maximize ) {
+                alpha = Math.max( alpha, best_score );
+            }
+            else {
                 beta = Math.min( beta, best_score );
-                if ( beta <= alpha ) {
-                    return beta;
+            }
+            if ( alpha >= beta ) {
+                if ( best_move != PASS ) {
+                    history[child.getRow()][child.getCol()] += remaining * remaining;
+                }
+                break;
+            }
+        }
+
+        final int bound;
+        if ( best_score <= original_alpha ) {
+            bound = UPPER;
+        }
+        else if ( best_score >= original_beta ) {
+            bound = LOWER;
+        }
+        else {
+            bound = EXACT;
+        }
+        store( hash, remaining, best_score, bound, best_move );
+        return best_score;
+    }
+
+    /**
+     * Sorts moves so the most promising are searched first: first_move, then
+     * by history score. Duplicate squares are removed.
+     *
+     * @param moves
+     *            ArrayList of valid moves, may contain the same square twice
+     * @param first_move
+     *            [x, y] move to place first. May be null
+     * @return Returns a new ArrayList of MoveNodes in search order
+     */
+    private ArrayList<MoveNode> orderMoves ( final ArrayList<MoveNode> moves, final int[] first_move ) {
+        final ArrayList<MoveNode> ordered = new ArrayList<MoveNode>();
+        final boolean[][] seen = new boolean[MAX_ROW + 1][MAX_COL + 1];
+
+        for ( final MoveNode move : moves ) {
+            // getValidMoves reports a square once per direction it flips in
+            if ( seen[move.getRow()][move.getCol()] ) {
+                continue;
+            }
+            seen[move.getRow()][move.getCol()] = true;
+            int priority = history[move.getRow()][move.getCol()];
+            if ( first_move != null && first_move[0] == move.getRow() && first_move[1] == move.getCol() ) {
+                priority = Integer.MAX_VALUE;
+            }
+            ordered.add( new MoveNode( move.getPosition(), priority ) );
+        }
+        Collections.sort( ordered );
+        return ordered;
+    }
+
+    /**
+     * Follows the best moves remembered for each position to rebuild the line
+     * of play the last completed iteration expects.
+     *
+     * @param board
+     *            Current state of the game board
+     * @param best_move
+     *            [x, y] move the agent is about to play
+     * @param depth
+     *            Maximum length of the line
+     * @return Returns an ArrayList of [x, y] moves starting with best_move,
+     *         with PASS for each forced pass
+     */
+    private ArrayList<int[]> extractPrincipalVariation ( final int[][] board, final int[] best_move,
+            final int depth ) {
+        final ArrayList<int[]> line = new ArrayList<int[]>();
+        int[][] position = board;
+        long hash = hash( board, agent );
+        int mover = agent;
+        int[] move = best_move;
+
+        while ( move != null && line.size() < depth ) {
+            line.add( move );
+            final int other = ( mover == 1 ) ? 2 : 1;
+            if ( move == PASS ) {
+                hash ^= SIDE_KEY;
+            }
+            else {
+                final ArrayList<MoveNode> change_tiles = perceive( move, position, mover, other );
+                hash = hashMove( hash, position, change_tiles, mover );
+                position = flipTiles( change_tiles, position, mover );
+            }
+            mover = other;
+
+            final SearchEntry entry = probe( hash );
+            move = ( entry == null ) ? null : entry.best_move;
+            // Guard against a hash collision handing back a move that is not
+            // valid here
+            final ArrayList<MoveNode> valid_moves = getValidMoves( position, mover, ( mover == 1 ) ? 2 : 1 );
+            if ( move == PASS ? valid_moves.size() != 0 : move != null && !containsMove( valid_moves, move ) ) {
+                move = null;
+            }
+        }
+        return line;
+    }
+
+    /**
+     * Looks up the remembered result of searching a position
+     *
+     * @param hash
+     *            Zobrist hash of the position
+     * @return Returns the SearchEntry of the position, or null if there is none
+     */
+    private SearchEntry probe ( final long hash ) {
+        final SearchEntry entry = table[(int) ( hash & ( TABLE_SIZE - 1 ) )];
+        return ( entry != null && entry.hash == hash ) ? entry : null;
+    }
+
+    /**
+     * Remembers the result of searching a position. An entry from this turn
+     * is only replaced by a search at least as deep, while entries from older
+     * turns are always replaced.
+     *
+     * @param hash
+     *            Zobrist hash of the position
+     * @param depth
+     *            Number of plies searched below the position
+     * @param score
+     *            Score found for the position
+     * @param bound
+     *            EXACT, LOWER or UPPER
+     * @param best_move
+     *            [x, y] best move found for the position
+     */
+    private void store ( final long hash, final int depth, final int score, final int bound,
+            final int[] best_move ) {
+        final int index = (int) ( hash & ( TABLE_SIZE - 1 ) );
+        final SearchEntry entry = table[index];
+        if ( entry == null ) {
+            table[index] = new SearchEntry( hash, depth, score, bound, best_move, search_age );
+        }
+        else if ( entry.age != search_age || depth >= entry.depth ) {
+            entry.update( hash, depth, score, bound, best_move, search_age );
+        }
+    }
+
+    /**
+     * Checks whether a search result is remembered for a position. Stops
+     * pondering first.
+     *
+     * @param board
+     *            Game board of the position
+     * @param player
+     *            int value of the player to move
+     * @return Return true if the position has a SearchEntry, otherwise false
+     */
+    boolean isSearched ( final int[][] board, final int player ) {
+        stopPondering();
+        return probe( hash( board, player ) ) != null;
+    }
+
+    /**
+     * Stops pondering first.
+     *
+     * @return Returns the best line of play kept from the previous turn
+     */
+    ArrayList<int[]> getPrincipalVariation () {
+        stopPondering();
+        return principal_variation;
+    }
+
+    /**
+     * Stops pondering first.
+     *
+     * @return Returns the deepest iteration completed, relative to the latest
+     *         game board
+     */
+    int getCompletedDepth () {
+        stopPondering();
+        return completed_depth;
+    }
+
+    /**
+     * Computes the Zobrist hash of a position
+     *
+     * @param board
+     *            Game board of the position
+     * @param player
+     *            int value of the player to move
+     * @return Returns the XOR of the keys of every tile and the player to move
+     */
+    private long hash ( final int[][] board, final int player ) {
+        long hash = ( player == 2 ) ? SIDE_KEY : 0;
+        for ( int row = 0; row < board.length; row++ ) {
+            for ( int col = 0; col < board[row].length; col++ ) {
+                if ( board[row][col] != 0 ) {
+                    hash ^= ZOBRIST[row][col][board[row][col]];
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Updates a Zobrist hash for a move without rehashing the whole board
+     *
+     * @param hash
+     *            Zobrist hash of board with player to move
+     * @param board
+     *            Game board before the move is placed
+     * @param change_tiles
+     *            ArrayList of tiles set to player by the move, from perceive
+     * @param player
+     *            int value of the player placing the move
+     * @return Returns the hash of the new board with the other player to move
+     */
+    private long hashMove ( long hash, final int[][] board, final ArrayList<MoveNode> change_tiles,
+            final int player ) {
+        for ( final MoveNode tile : change_tiles ) {
+            final int previous = board[tile.getRow()][tile.getCol()];
+            if ( previous != 0 ) {
+                hash ^= ZOBRIST[tile.getRow()][tile.getCol()][previous];
+            }
+            hash ^= ZOBRIST[tile.getRow()][tile.getCol()][player];
+        }
+        return hash ^ SIDE_KEY;
+    }
+
+    /**
+     * Checks whether a valid move is among the given moves
+     *
+     * @param moves
+     *            ArrayList of valid moves
+     * @param move
+     *            [x, y] move to look for
+     * @return Return true if moves contains move, otherwise false
+     */
+    private boolean containsMove ( final ArrayList<MoveNode> moves, final int[] move ) {
+        for ( final MoveNode valid_move : moves ) {
+            if ( valid_move.getRow() == move[0] && valid_move.getCol() == move[1] ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether any tile on the previous board is blank on the next one.
+     * Tiles are never removed during a game, so this means a new game began.
+     *
+     * @param before
+     *            Game board on the previous turn
+     * @param after
+     *            Game board on this turn
+     * @return Return true if a tile was removed, otherwise false
+     */
+    private boolean tilesRemoved ( final int[][] before, final int[][] after ) {
+        for ( int row = 0; row < before.length; row++ ) {
+            for ( int col = 0; col < before[row].length; col++ ) {
+                if ( before[row][col] != 0 && after[row][col] == 0 ) {
+                    return true;
                 }
             }
-            return best_score;
         }
+        return false;
+    }
+
+    /**
+     * Counts the blank squares of the game board
+     *
+     * @param board
+     *            Current state of the game board
+     * @return Returns the number of squares with value 0
+     */
+    private int countEmpty ( final int[][] board ) {
+        int empty = 0;
+        for ( int row = 0; row < board.length; row++ ) {
+            for ( int col = 0; col < board[row].length; col++ ) {
+                if ( board[row][col] == 0 ) {
+                    empty++;
+                }
+            }
+        }
+        return empty;
     }
 
     /**
@@ -479,4 +1134,72 @@ public class AI {
         }
 
     }
+
+    /**
+     * Result of searching a position, kept between iterations and turns.
+     * Entries are reused in place when their slot is replaced.
+     */
+    private class SearchEntry {
+
+        /** Zobrist hash of the position */
+        private long  hash;
+        /** Number of plies searched below the position */
+        private int   depth;
+        /** Score of the position from the agent's point of view */
+        private int   score;
+        /** Whether score is EXACT, a LOWER bound or an UPPER bound */
+        private int   bound;
+        /** [x,y] best move found for the player to move, or PASS */
+        private int[] best_move;
+        /** Turn the position was searched on */
+        private int   age;
+
+        /**
+         * Constructor for creating entries of searched positions
+         *
+         * @param hash
+         *            Zobrist hash of the position
+         * @param depth
+         *            Number of plies searched below the position
+         * @param score
+         *            Score of the position
+         * @param bound
+         *            EXACT, LOWER or UPPER
+         * @param best_move
+         *            [x,y] best move found for the position
+         * @param age
+         *            Turn the position was searched on
+         */
+        public SearchEntry ( final long hash, final int depth, final int score, final int bound,
+                final int[] best_move, final int age ) {
+            update( hash, depth, score, bound, best_move, age );
+        }
+
+        /**
+         * Overwrites the entry with the result of searching another position
+         *
+         * @param hash
+         *            Zobrist hash of the position
+         * @param depth
+         *            Number of plies searched below the position
+         * @param score
+         *            Score of the position
+         * @param bound
+         *            EXACT, LOWER or UPPER
+         * @param best_move
+         *            [x,y] best move found for the position
+         * @param age
+         *            Turn the position was searched on
+         */
+        public void update ( final long hash, final int depth, final int score, final int bound,
+                final int[] best_move, final int age ) {
+            this.hash = hash;
+            this.depth = depth;
+            this.score = score;
+            this.bound = bound;
+            this.best_move = best_move;
+            this.age = age;
+        }
+
+    }
 }
@@ -34,6 +34,7 @@ public class Client {
             while ( ( state = readStateFromServer() ) != null ) {
                 final int[] move = ai.computeMove( state );
                 respondWithMove( move );
+                ai.ponder();
             }
         }
         catch ( final Exception e ) {